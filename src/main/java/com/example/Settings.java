@@ -0,0 +1,20 @@
+package com.example;
+
+/**
+ * Reads app settings, which the Functions host exposes as environment variables.
+ */
+public class Settings {
+    private Settings() {
+    }
+
+    /**
+     * Returns the integer value of the setting, or the default when it is missing or blank.
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.enrich;
+
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.example.Settings;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Optional enrichment stage that computes a content fingerprint (SHA-256 by default) once per blob,
+ * so downstream consumers can deduplicate or verify blobs without downloading them again.
+ *
+ * The blob is read with parallel ranged downloads into pooled direct buffers. Chunks are digested in order,
+ * so memory use is bounded by the pool and the result equals a plain hash of the whole content.
+ */
+public class ContentFingerprinter {
+    private static final int MB = 1024 * 1024;
+    private static final Logger LOGGER = Logger.getLogger(ContentFingerprinter.class.getName());
+
+    private final boolean enabled;
+    private final String algorithm;
+    private final long maxBlobSize;
+    private final int parallelism;
+    private final DirectBufferPool bufferPool;
+    private final ExecutorService executor;
+
+    /**
+     * Reads one range of the content into the given buffer, filling it up to its limit.
+     */
+    public interface RangeReader {
+        void read(long offset, ByteBuffer target) throws Exception;
+    }
+
+    /**
+     * A disabled fingerprinter allocates neither buffers nor threads, its sizes are not checked.
+     */
+    public ContentFingerprinter(boolean enabled, String algorithm, long maxBlobSize, int chunkSize, int parallelism, int poolSize) {
+        this.enabled = enabled;
+        this.algorithm = algorithm;
+        this.maxBlobSize = maxBlobSize;
+        this.parallelism = parallelism;
+        if (!enabled) {
+            this.bufferPool = null;
+            this.executor = null;
+            return;
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.bufferPool = new DirectBufferPool(chunkSize, poolSize);
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "content-fingerprint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the fingerprinter shared by all functions of the app, so they share one buffer pool and thread pool.
+     */
+    public static ContentFingerprinter getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a fingerprinter from the FINGERPRINT_* app settings. The stage is disabled unless FINGERPRINT_ENABLED is true,
+     * and falls back to disabled with a warning when a setting is invalid, so a bad value never breaks the functions.
+     */
+    public static ContentFingerprinter fromEnvironment() {
+        String algorithm = System.getenv("FINGERPRINT_ALGORITHM") != null ? System.getenv("FINGERPRINT_ALGORITHM") : "SHA-256";
+        if (!Boolean.parseBoolean(System.getenv("FINGERPRINT_ENABLED"))) {
+            return disabled(algorithm);
+        }
+
+        try {
+            MessageDigest.getInstance(algorithm);
+            int maxBlobSizeMb = Settings.getInt("FINGERPRINT_MAX_BLOB_SIZE_MB", 256);
+            int chunkSizeMb = Settings.getInt("FINGERPRINT_CHUNK_SIZE_MB", 4);
+            int parallelism = Settings.getInt("FINGERPRINT_PARALLELISM", 4);
+            int poolSize = Settings.getInt("FINGERPRINT_BUFFER_POOL_SIZE", parallelism * 2);
+
+            if (maxBlobSizeMb < 0) {
+                throw new IllegalArgumentException("FINGERPRINT_MAX_BLOB_SIZE_MB must not be negative");
+            }
+            if (chunkSizeMb <= 0 || chunkSizeMb > Integer.MAX_VALUE / MB) {
+                throw new IllegalArgumentException("FINGERPRINT_CHUNK_SIZE_MB must be between 1 and " + Integer.MAX_VALUE / MB);
+            }
+            if (parallelism <= 0 || poolSize <= 0) {
+                throw new IllegalArgumentException("FINGERPRINT_PARALLELISM and FINGERPRINT_BUFFER_POOL_SIZE must be positive");
+            }
+
+            return new ContentFingerprinter(true, algorithm, maxBlobSizeMb * (long) MB, chunkSizeMb * MB, parallelism, poolSize);
+        } catch (NoSuchAlgorithmException | IllegalArgumentException e) {
+            // NumberFormatException from a malformed setting is an IllegalArgumentException as well
+            LOGGER.warning("Invalid content fingerprint settings, fingerprinting is disabled: " + e.getMessage());
+            return disabled(algorithm);
+        }
+    }
+
+    private static ContentFingerprinter disabled(String algorithm) {
+        return new ContentFingerprinter(false, algorithm, 0, 0, 0, 0);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns true when the stage is enabled and the blob is small enough to be fingerprinted.
+     */
+    public boolean shouldFingerprint(long blobSize) {
+        return enabled && blobSize >= 0 && blobSize <= maxBlobSize;
+    }
+
+    /**
+     * Fingerprints a blob. When an ETag is given, every range is read from that exact version of the blob.
+     */
+    public String fingerprint(BlobClient blobClient, long blobSize, String eTag) throws Exception {
+        BlobRequestConditions conditions = eTag != null ? new BlobRequestConditions().setIfMatch(eTag) : null;
+
+        return fingerprint((offset, target) -> blobClient.downloadStreamWithResponse(
+                new ByteBufferOutputStream(target),
+                new BlobRange(offset, (long) target.remaining()),
+                null, conditions, false, null, Context.NONE), blobSize);
+    }
+
+    /**
+     * Fingerprints content of the given size, returned as a lowercase hex string.
+     */
+    public String fingerprint(RangeReader reader, long size) throws Exception {
+        if (!enabled) {
+            throw new IllegalStateException("Content fingerprinting is disabled");
+        }
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        int chunkSize = bufferPool.getBufferSize();
+        long nextOffset = 0;
+        Deque<Chunk> inFlight = new ArrayDeque<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+
+        try {
+            while (nextOffset < size || !inFlight.isEmpty()) {
+                // Keep up to `parallelism` ranges downloading; only block on the pool when nothing is in flight
+                while (nextOffset < size && inFlight.size() < parallelism) {
+                    ByteBuffer buffer = inFlight.isEmpty() ? bufferPool.acquire() : bufferPool.tryAcquire();
+                    if (buffer == null) {
+                        break;
+                    }
+                    // Buffer casts keep the bytecode compatible with the Java 8 runtime when built on a newer JDK
+                    ((Buffer) buffer).limit((int) Math.min(chunkSize, size - nextOffset));
+                    inFlight.add(submit(reader, nextOffset, buffer, aborted));
+                    nextOffset += buffer.limit();
+                }
+
+                // The chunk stays in flight until its download is known to be complete
+                Chunk chunk = inFlight.peek();
+                chunk.future.get();
+                inFlight.poll();
+                ((Buffer) chunk.buffer).flip();
+                digest.update(chunk.buffer);
+                bufferPool.release(chunk.buffer);
+            }
+        } finally {
+            aborted.set(true);
+            drain(inFlight);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Waits, ignoring interrupts, for downloads still writing into pooled buffers.
+     * Only buffers whose download completed go back to the pool; a failed download may still be written to, so its buffer is discarded.
+     */
+    private void drain(Deque<Chunk> inFlight) {
+        boolean interrupted = false;
+
+        for (Chunk chunk : inFlight) {
+            boolean completed = false;
+            while (true) {
+                try {
+                    chunk.future.get();
+                    completed = true;
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+
+            if (completed) {
+                bufferPool.release(chunk.buffer);
+            } else {
+                bufferPool.discard(chunk.buffer);
+            }
+        }
+        inFlight.clear();
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Chunk submit(RangeReader reader, long offset, ByteBuffer buffer, AtomicBoolean aborted) {
+        Future<?> future = executor.submit(() -> {
+            // Ranges not started yet are skipped once the fingerprint has failed
+            if (aborted.get()) {
+                return null;
+            }
+            reader.read(offset, buffer);
+            if (buffer.hasRemaining()) {
+                throw new IOException("Short read at offset " + offset + ": " + buffer.remaining() + " bytes missing");
+            }
+            return null;
+        });
+        return new Chunk(buffer, future);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static class InstanceHolder {
+        private static final ContentFingerprinter INSTANCE = fromEnvironment();
+    }
+
+    private static class Chunk {
+        private final ByteBuffer buffer;
+        private final Future<?> future;
+
+        private Chunk(ByteBuffer buffer, Future<?> future) {
+            this.buffer = buffer;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Writes a ranged download straight into a pooled buffer.
+     */
+    private static class ByteBufferOutputStream extends OutputStream {
+        private final ByteBuffer target;
+
+        private ByteBufferOutputStream(ByteBuffer target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!target.hasRemaining()) {
+                throw new IOException("Range larger than buffer");
+            }
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > target.remaining()) {
+                throw new IOException("Range larger than buffer");
+            }
+            target.put(bytes, offset, length);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.enrich;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-capacity pool of direct byte buffers.
+ * Buffers are allocated on first use, so the pool never holds more than capacity * bufferSize bytes.
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final int capacity;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public DirectBufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Buffer size and capacity must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.freeBuffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns a free buffer, or null when every buffer of the pool is in use.
+     */
+    public ByteBuffer tryAcquire() {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null) {
+            buffer = allocate();
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a free buffer, waiting for one to be released if necessary.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        while (true) {
+            ByteBuffer buffer = tryAcquire();
+            if (buffer == null) {
+                // Wake up periodically, a discarded buffer frees capacity without being offered back
+                buffer = freeBuffers.poll(100, TimeUnit.MILLISECONDS);
+            }
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+    }
+
+    public void release(ByteBuffer buffer) {
+        ((Buffer) buffer).clear();
+        freeBuffers.offer(buffer);
+    }
+
+    /**
+     * Drops a buffer that may still be written to. The pool allocates a fresh one in its place when needed.
+     */
+    public void discard(ByteBuffer buffer) {
+        allocated.decrementAndGet();
+    }
+
+    private ByteBuffer allocate() {
+        while (true) {
+            int current = allocated.get();
+            if (current >= capacity) {
+                return null;
+            }
+            if (allocated.compareAndSet(current, current + 1)) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+    }
+}
@@ -12,6 +12,9 @@ import com.azure.storage.blob.changefeed.models.BlobChangefeedEventData;
 import com.azure.storage.blob.changefeed.models.BlobChangefeedEventType;
 import com.azure.storage.blob.models.BlobProperties;
 import com.azure.storage.blob.models.BlobType;
+import com.example.enrich.ContentFingerprinter;
+import com.example.startup.Lazy;
+import com.example.startup.StartupMetrics;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.annotation.FunctionName;
@@ -28,36 +31,33 @@ import java.util.Map;
 public class ChangeFeedProcessorFunction {
 
     // Configuration settings
-    private static final String STORAGE_CONNECTION_STRING = System.getenv("STORAGE_CONNECTION_STRING");
-    private static final String SERVICE_BUS_CONNECTION_STRING = System.getenv("SERVICE_BUS_CONNECTION_STRING");
-    private static final String SERVICE_BUS_QUEUE_NAME = System.getenv("SERVICE_BUS_QUEUE_NAME");
     private static final String CHECKPOINT_CONTAINER_NAME = "changefeedcheckpoints";
     private static final String CHECKPOINT_BLOB_NAME = "checkpoint.txt";
 
+    // Clients are created on first use and reused by later invocations
+    private static final Lazy<BlobServiceClient> BLOB_SERVICE_CLIENT =
+            new Lazy<>("ProcessChangeFeed.blobServiceClient", ChangeFeedProcessorFunction::createBlobServiceClient);
+    private static final Lazy<BlobChangefeedClient> CHANGEFEED_CLIENT =
+            new Lazy<>("ProcessChangeFeed.changefeedClient", () -> new BlobChangefeedClientBuilder(BLOB_SERVICE_CLIENT.get()).buildClient());
+    private static final Lazy<BlobClient> CHECKPOINT_BLOB_CLIENT =
+            new Lazy<>("ProcessChangeFeed.checkpointClient", ChangeFeedProcessorFunction::createCheckpointBlobClient);
+    private static final Lazy<ServiceBusSenderClient> SENDER_CLIENT =
+            new Lazy<>("ProcessChangeFeed.senderClient", ChangeFeedProcessorFunction::createSenderClient);
+    private static final Lazy<ObjectMapper> OBJECT_MAPPER =
+            new Lazy<>("ProcessChangeFeed.objectMapper", ObjectMapper::new);
+
     @FunctionName("ProcessChangeFeed")
     public void run(
             @TimerTrigger(name = "changeFeedTrigger", schedule = "0 */5 * * * *") String timerInfo,
             final ExecutionContext context) {
+        StartupMetrics.Invocation invocation = StartupMetrics.startInvocation("ProcessChangeFeed");
         context.getLogger().info("Change Feed processing function executed at: " + OffsetDateTime.now());
 
         try {
-            // Initialize BlobServiceClient
-            BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
-                    .connectionString(STORAGE_CONNECTION_STRING)
-                    .buildClient();
-
-            // Initialize BlobChangefeedClient
-            BlobChangefeedClient changefeedClient = new BlobChangefeedClientBuilder(blobServiceClient).buildClient();
-
-            // Create or get the checkpoint container
-            BlobContainerClient checkpointContainerClient = blobServiceClient.getBlobContainerClient(CHECKPOINT_CONTAINER_NAME);
-            if (!checkpointContainerClient.exists()) {
-                checkpointContainerClient.create();
-                context.getLogger().info("Created checkpoint container: " + CHECKPOINT_CONTAINER_NAME);
-            }
+            BlobChangefeedClient changefeedClient = CHANGEFEED_CLIENT.get();
 
             // Get the checkpoint blob client
-            BlobClient checkpointBlobClient = checkpointContainerClient.getBlobClient(CHECKPOINT_BLOB_NAME);
+            BlobClient checkpointBlobClient = CHECKPOINT_BLOB_CLIENT.get();
 
             // Read the last processed cursor (if exists)
             String lastCursor = null;
@@ -81,16 +81,10 @@ public class ChangeFeedProcessorFunction {
             }
 
             // Prepare Service Bus client
-            ServiceBusClientBuilder serviceBusClientBuilder = new ServiceBusClientBuilder()
-                    .connectionString(SERVICE_BUS_CONNECTION_STRING);
-
-            ServiceBusSenderClient senderClient = serviceBusClientBuilder
-                    .sender()
-                    .queueName(SERVICE_BUS_QUEUE_NAME)
-                    .buildClient();
+            ServiceBusSenderClient senderClient = SENDER_CLIENT.get();
 
             // Initialize ObjectMapper for JSON processing
-            ObjectMapper objectMapper = new ObjectMapper();
+            ObjectMapper objectMapper = OBJECT_MAPPER.get();
 
             // Process events
             String newCursor = lastCursor;
@@ -125,6 +119,10 @@ public class ChangeFeedProcessorFunction {
                     metadata.put("BlobType", String.valueOf(blobType));
                     metadata.put("EventTime", eventTime.toString());
                     metadata.put("ProcessingTime", OffsetDateTime.now(ZoneOffset.UTC).toString());
+                    // The version the change feed event is about, the blob may have been overwritten since
+                    metadata.put("ETag", eventData.getETag());
+                    long eventSize = eventData.getContentLength() != null ? eventData.getContentLength() : fileSize;
+                    addContentFingerprint(metadata, blobClient, eventSize, eventData.getETag(), context);
 
                     String messageBody = objectMapper.writeValueAsString(metadata);
 
@@ -140,8 +138,6 @@ public class ChangeFeedProcessorFunction {
                 //TODO this part does not work
             }
 
-            senderClient.close();
-
             // Save the new cursor for next execution
             if (newCursor != null && !newCursor.equals(lastCursor)) {
                 InputStream cursorStream = new ByteArrayInputStream(newCursor.getBytes("UTF-8"));
@@ -153,6 +149,47 @@ public class ChangeFeedProcessorFunction {
 
         } catch (Exception e) {
             context.getLogger().severe("Error processing the change feed: " + e.getMessage());
+        } finally {
+            invocation.finish(context);
+        }
+    }
+
+    private static BlobServiceClient createBlobServiceClient() {
+        return new BlobServiceClientBuilder()
+                .connectionString(System.getenv("STORAGE_CONNECTION_STRING"))
+                .buildClient();
+    }
+
+    private static BlobClient createCheckpointBlobClient() {
+        // Create or get the checkpoint container
+        BlobContainerClient checkpointContainerClient = BLOB_SERVICE_CLIENT.get().getBlobContainerClient(CHECKPOINT_CONTAINER_NAME);
+        if (!checkpointContainerClient.exists()) {
+            checkpointContainerClient.create();
+        }
+
+        return checkpointContainerClient.getBlobClient(CHECKPOINT_BLOB_NAME);
+    }
+
+    private static ServiceBusSenderClient createSenderClient() {
+        return new ServiceBusClientBuilder()
+                .connectionString(System.getenv("SERVICE_BUS_CONNECTION_STRING"))
+                .sender()
+                .queueName(System.getenv("SERVICE_BUS_QUEUE_NAME"))
+                .buildClient();
+    }
+
+    private void addContentFingerprint(Map<String, Object> metadata, BlobClient blobClient, long fileSize, String eTag, ExecutionContext context) {
+        // The fingerprint is best effort, the event is still published without it
+        try {
+            ContentFingerprinter fingerprinter = ContentFingerprinter.getInstance();
+            if (!fingerprinter.shouldFingerprint(fileSize)) {
+                return;
+            }
+
+            metadata.put("ContentFingerprint", fingerprinter.fingerprint(blobClient, fileSize, eTag));
+            metadata.put("FingerprintAlgorithm", fingerprinter.getAlgorithm());
+        } catch (Exception e) {
+            context.getLogger().warning("Failed to fingerprint blob " + blobClient.getBlobName() + ": " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,79 @@
+package com.example.pull;
+
+/**
+ * State carried between incremental cleanup passes.
+ * Persisted as JSON in the cleanup checkpoint blob so a pass can resume where the previous one stopped.
+ */
+public class CleanupCheckpoint {
+    // Table query continuation token, null when the next pass starts a new sweep
+    private String continuationToken;
+    // Expiry cutoff used for the whole sweep so that the continuation token stays valid
+    private String sweepCutoff;
+    // Number of rows the next pass is allowed to delete
+    private int rowBudget;
+    private int lastPassDeleted;
+    private boolean lastPassThrottled;
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
+    public String getSweepCutoff() {
+        return sweepCutoff;
+    }
+
+    public void setSweepCutoff(String sweepCutoff) {
+        this.sweepCutoff = sweepCutoff;
+    }
+
+    public int getRowBudget() {
+        return rowBudget;
+    }
+
+    public void setRowBudget(int rowBudget) {
+        this.rowBudget = rowBudget;
+    }
+
+    public int getLastPassDeleted() {
+        return lastPassDeleted;
+    }
+
+    public void setLastPassDeleted(int lastPassDeleted) {
+        this.lastPassDeleted = lastPassDeleted;
+    }
+
+    public boolean isLastPassThrottled() {
+        return lastPassThrottled;
+    }
+
+    public void setLastPassThrottled(boolean lastPassThrottled) {
+        this.lastPassThrottled = lastPassThrottled;
+    }
+
+    /**
+     * Adjusts the row budget for the next pass.
+     * Throttling halves the budget, a backlog that used up the whole budget doubles it,
+     * a pass that ran out of time keeps what it managed, and a finished sweep decays back towards the minimum.
+     */
+    public void adjustPace(int deleted, boolean backlogRemaining, boolean throttled, int minRowBudget, int maxRowBudget) {
+        int budget = rowBudget > 0 ? rowBudget : minRowBudget;
+
+        if (throttled) {
+            budget = budget / 2;
+        } else if (backlogRemaining && deleted >= budget) {
+            budget = budget * 2;
+        } else if (backlogRemaining) {
+            budget = deleted;
+        } else {
+            budget = budget / 2;
+        }
+
+        rowBudget = Math.max(minRowBudget, Math.min(maxRowBudget, budget));
+        lastPassDeleted = deleted;
+        lastPassThrottled = throttled;
+    }
+}
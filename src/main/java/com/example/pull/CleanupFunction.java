@@ -1,53 +1,163 @@
 package com.example.pull;
 
-import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
 import com.azure.core.util.Context;
 import com.azure.data.tables.TableClient;
 import com.azure.data.tables.TableClientBuilder;
 import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.example.Settings;
+import com.example.startup.Lazy;
+import com.example.startup.StartupMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.TimerTrigger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Iterator;
 
+/**
+ * Deletes expired entries in small, resumable passes instead of one nightly sweep.
+ * Each pass is bounded by a time and a row budget; the query continuation token and the
+ * current pace are kept in a checkpoint blob between passes.
+ */
 public class CleanupFunction {
     // Configuration settings
-    private static final String STORAGE_CONNECTION_STRING = System.getenv("STORAGE_CONNECTION_STRING");
     private static final String TABLE_NAME = "FileMetadata";
+    private static final String CHECKPOINT_CONTAINER_NAME = "cleanupcheckpoints";
+    private static final String CHECKPOINT_BLOB_NAME = "cleanup-checkpoint.json";
+
+    // Sees throttled responses as soon as they happen, before the retry policy gives up
+    private static final ThrottleCountingPolicy THROTTLE_POLICY = new ThrottleCountingPolicy();
+
+    // Clients are created on first use and reused by later invocations
+    private static final Lazy<TableClient> TABLE_CLIENT =
+            new Lazy<>("CleanupExpiredEntries.tableClient", CleanupFunction::createTableClient);
+    private static final Lazy<BlobClient> CHECKPOINT_BLOB_CLIENT =
+            new Lazy<>("CleanupExpiredEntries.checkpointClient", CleanupFunction::createCheckpointBlobClient);
+    private static final Lazy<ObjectMapper> OBJECT_MAPPER =
+            new Lazy<>("CleanupExpiredEntries.objectMapper", ObjectMapper::new);
+
+    private static final int MAX_PAGE_SIZE = 1000; // Table service page size limit
 
     @FunctionName("CleanupExpiredEntries")
     public void run(
-            @TimerTrigger(name = "cleanupTimer", schedule = "0 0 0 * * *") String timerInfo,
+            @TimerTrigger(name = "cleanupTimer", schedule = "0 */5 * * * *") String timerInfo,
             final ExecutionContext context) {
+        StartupMetrics.Invocation invocation = StartupMetrics.startInvocation("CleanupExpiredEntries");
         context.getLogger().info("Cleanup function executed at: " + OffsetDateTime.now());
 
         try {
-            TableClient tableClient = new TableClientBuilder()
-                    .connectionString(STORAGE_CONNECTION_STRING)
-                    .tableName(TABLE_NAME)
-                    .buildClient();
+            // Pass budgets, kept well below the function timeout; read per pass so a bad value is only logged
+            long deadline = System.currentTimeMillis() + Settings.getInt("CLEANUP_TIME_BUDGET_SECONDS", 60) * 1000L;
+            int minRowsPerPass = Settings.getInt("CLEANUP_MIN_ROWS_PER_PASS", 100);
+            int maxRowsPerPass = Settings.getInt("CLEANUP_MAX_ROWS_PER_PASS", 5000);
 
-            // Define the filter to find expired entries
-            String expiryTime = OffsetDateTime.now(ZoneOffset.UTC).toString();
-            String filter = "ExpiryTimestamp lt '" + expiryTime + "'";
+            TableClient tableClient = TABLE_CLIENT.get();
+            BlobClient checkpointBlobClient = CHECKPOINT_BLOB_CLIENT.get();
+            ObjectMapper objectMapper = OBJECT_MAPPER.get();
+            CleanupCheckpoint checkpoint = readCheckpoint(checkpointBlobClient, objectMapper, context);
+
+            // Start a new sweep when the previous one finished; a null token alone is the start of the current sweep
+            if (checkpoint.getSweepCutoff() == null) {
+                checkpoint.setContinuationToken(null);
+                checkpoint.setSweepCutoff(OffsetDateTime.now(ZoneOffset.UTC).toString());
+            }
+
+            int rowBudget = checkpoint.getRowBudget() > 0 ? checkpoint.getRowBudget() : minRowsPerPass;
+            int pageSize = Math.min(rowBudget, MAX_PAGE_SIZE);
 
-            // Query for expired entries
-            PagedIterable<TableEntity> expiredEntities = tableClient.listEntities(new ListEntitiesOptions().setFilter(filter), null, Context.NONE);
+            // Define the filter to find expired entries
+            String filter = "ExpiryTimestamp lt '" + checkpoint.getSweepCutoff() + "'";
+            ListEntitiesOptions options = new ListEntitiesOptions().setFilter(filter).setTop(pageSize);
 
-            int deletedCount = 0;
+            // Query for expired entries, resuming from the stored continuation token
+            CleanupPass pass = new CleanupPass(
+                    continuationToken -> toPages(tableClient.listEntities(options, null, Context.NONE).iterableByPage(continuationToken)),
+                    entity -> tableClient.deleteEntity(entity.getPartitionKey(), entity.getRowKey()),
+                    THROTTLE_POLICY::getThrottledResponses,
+                    System::currentTimeMillis);
+            CleanupPass.Result result = pass.run(checkpoint.getContinuationToken(), rowBudget, deadline);
 
-            for (TableEntity entity : expiredEntities) {
-                tableClient.deleteEntity(entity.getPartitionKey(), entity.getRowKey());
-                deletedCount++;
+            checkpoint.setContinuationToken(result.getResumeToken());
+            if (!result.isBacklogRemaining()) {
+                checkpoint.setSweepCutoff(null);
             }
+            checkpoint.adjustPace(result.getDeletedCount(), result.isBacklogRemaining(), result.isThrottled(), minRowsPerPass, maxRowsPerPass);
+
+            writeCheckpoint(checkpointBlobClient, objectMapper, checkpoint);
 
-            context.getLogger().info("Deleted " + deletedCount + " expired entries from Azure Table Storage.");
+            context.getLogger().info("Deleted " + result.getDeletedCount() + " expired entries from Azure Table Storage."
+                    + (result.isThrottled() ? " Pass stopped by throttling (" + result.getThrottledResponses() + " throttled responses)." : "")
+                    + (result.isBacklogRemaining() ? " Backlog remains, next pass budget: " : " Sweep complete, next pass budget: ")
+                    + checkpoint.getRowBudget() + " rows.");
 
         } catch (Exception e) {
             context.getLogger().severe("Error during cleanup: " + e.getMessage());
+        } finally {
+            invocation.finish(context);
         }
     }
+
+    private static Iterator<CleanupPass.Page> toPages(Iterable<PagedResponse<TableEntity>> responses) {
+        Iterator<PagedResponse<TableEntity>> iterator = responses.iterator();
+        return new Iterator<CleanupPass.Page>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public CleanupPass.Page next() {
+                PagedResponse<TableEntity> response = iterator.next();
+                return new CleanupPass.Page(response.getValue(), response.getContinuationToken());
+            }
+        };
+    }
+
+    private static TableClient createTableClient() {
+        return new TableClientBuilder()
+                .connectionString(System.getenv("STORAGE_CONNECTION_STRING"))
+                .tableName(TABLE_NAME)
+                .addPolicy(THROTTLE_POLICY)
+                .buildClient();
+    }
+
+    private static BlobClient createCheckpointBlobClient() {
+        BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
+                .connectionString(System.getenv("STORAGE_CONNECTION_STRING"))
+                .buildClient();
+
+        // Create or get the checkpoint container
+        BlobContainerClient checkpointContainerClient = blobServiceClient.getBlobContainerClient(CHECKPOINT_CONTAINER_NAME);
+        if (!checkpointContainerClient.exists()) {
+            checkpointContainerClient.create();
+        }
+
+        return checkpointContainerClient.getBlobClient(CHECKPOINT_BLOB_NAME);
+    }
+
+    private CleanupCheckpoint readCheckpoint(BlobClient checkpointBlobClient, ObjectMapper objectMapper, ExecutionContext context) throws Exception {
+        if (!checkpointBlobClient.exists()) {
+            context.getLogger().info("No existing cleanup checkpoint found. Starting a new sweep.");
+            return new CleanupCheckpoint();
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        checkpointBlobClient.download(outputStream);
+        return objectMapper.readValue(outputStream.toByteArray(), CleanupCheckpoint.class);
+    }
+
+    private void writeCheckpoint(BlobClient checkpointBlobClient, ObjectMapper objectMapper, CleanupCheckpoint checkpoint) throws Exception {
+        byte[] checkpointBytes = objectMapper.writeValueAsBytes(checkpoint);
+        checkpointBlobClient.upload(new ByteArrayInputStream(checkpointBytes), checkpointBytes.length, true);
+    }
 }
@@ -0,0 +1,155 @@
+package com.example.pull;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.data.tables.models.TableEntity;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * One budgeted pass over the expired entries of a cleanup sweep.
+ * Table access is behind small interfaces so the resume, stop-early and throttling rules can be tested without the service.
+ */
+public class CleanupPass {
+    private final PageSource pageSource;
+    private final EntityDeleter deleter;
+    private final LongSupplier throttledResponses;
+    private final LongSupplier clock;
+
+    /**
+     * Lists pages of expired entries, starting at the given continuation token (null for the first page).
+     * Fetching a page may throw the same exceptions as the Table client.
+     */
+    public interface PageSource {
+        Iterator<Page> pagesFrom(String continuationToken);
+    }
+
+    public interface EntityDeleter {
+        void delete(TableEntity entity);
+    }
+
+    public static class Page {
+        private final List<TableEntity> entities;
+        private final String continuationToken;
+
+        public Page(List<TableEntity> entities, String continuationToken) {
+            this.entities = entities;
+            this.continuationToken = continuationToken;
+        }
+    }
+
+    public static class Result {
+        private final int deletedCount;
+        private final String resumeToken;
+        private final boolean backlogRemaining;
+        private final boolean throttled;
+        private final long throttledResponses;
+
+        private Result(int deletedCount, String resumeToken, boolean backlogRemaining, boolean throttled, long throttledResponses) {
+            this.deletedCount = deletedCount;
+            this.resumeToken = resumeToken;
+            this.backlogRemaining = backlogRemaining;
+            this.throttled = throttled;
+            this.throttledResponses = throttledResponses;
+        }
+
+        public int getDeletedCount() {
+            return deletedCount;
+        }
+
+        /**
+         * Token the next pass starts from; null together with a remaining backlog means the start of the sweep.
+         */
+        public String getResumeToken() {
+            return resumeToken;
+        }
+
+        public boolean isBacklogRemaining() {
+            return backlogRemaining;
+        }
+
+        public boolean isThrottled() {
+            return throttled;
+        }
+
+        public long getThrottledResponses() {
+            return throttledResponses;
+        }
+    }
+
+    public CleanupPass(PageSource pageSource, EntityDeleter deleter, LongSupplier throttledResponses, LongSupplier clock) {
+        this.pageSource = pageSource;
+        this.deleter = deleter;
+        this.throttledResponses = throttledResponses;
+        this.clock = clock;
+    }
+
+    /**
+     * Deletes expired entries from the given token on, until the sweep ends, the row budget is used,
+     * the deadline passes or the service throttles.
+     */
+    public Result run(String startToken, int rowBudget, long deadlineMillis) {
+        long throttledAtStart = throttledResponses.getAsLong();
+        int deletedCount = 0;
+        boolean stoppedEarly = false;
+        boolean throttledByError = false;
+        String pageToken = startToken;
+        String nextToken = null;
+
+        // Page fetches and deletes can both be throttled; either way the pass stops and the position is kept
+        try {
+            Iterator<Page> pages = pageSource.pagesFrom(startToken);
+
+            pages:
+            while (true) {
+                // Checked before every fetch as well, sparse or empty pages must not run past the budgets
+                if (mustStop(deletedCount, rowBudget, deadlineMillis, throttledAtStart)) {
+                    stoppedEarly = true;
+                    break;
+                }
+                if (!pages.hasNext()) {
+                    break;
+                }
+
+                Page page = pages.next();
+                nextToken = page.continuationToken;
+
+                for (TableEntity entity : page.entities) {
+                    if (mustStop(deletedCount, rowBudget, deadlineMillis, throttledAtStart)) {
+                        stoppedEarly = true;
+                        break pages;
+                    }
+
+                    deleter.delete(entity);
+                    deletedCount++;
+                }
+
+                // The whole page is gone, the next pass can start after it
+                pageToken = nextToken;
+                if (pageToken == null) {
+                    break;
+                }
+            }
+        } catch (HttpResponseException e) {
+            if (e.getResponse() == null || !ThrottleCountingPolicy.isThrottled(e.getResponse().getStatusCode())) {
+                throw e;
+            }
+            throttledByError = true;
+            stoppedEarly = true;
+        }
+
+        long throttledCount = throttledResponses.getAsLong() - throttledAtStart;
+
+        // When stopped mid-page, resume from the start of that page; already deleted rows will not be returned again
+        String resumeToken = stoppedEarly ? pageToken : nextToken;
+        boolean backlogRemaining = stoppedEarly || nextToken != null;
+        return new Result(deletedCount, resumeToken, backlogRemaining, throttledByError || throttledCount > 0, throttledCount);
+    }
+
+    private boolean mustStop(int deletedCount, int rowBudget, long deadlineMillis, long throttledAtStart) {
+        return throttledResponses.getAsLong() > throttledAtStart
+                || deletedCount >= rowBudget
+                || clock.getAsLong() >= deadlineMillis;
+    }
+}
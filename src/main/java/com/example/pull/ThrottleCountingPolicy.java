@@ -0,0 +1,34 @@
+package com.example.pull;
+
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts throttled responses (429 / 503) seen by a client, including the ones the retry policy retries.
+ * Runs per retry so every attempt is counted, not only the final response.
+ */
+public class ThrottleCountingPolicy implements HttpPipelinePolicy {
+    private final AtomicLong throttledResponses = new AtomicLong();
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        return next.process().doOnNext(response -> {
+            if (isThrottled(response.getStatusCode())) {
+                throttledResponses.incrementAndGet();
+            }
+        });
+    }
+
+    public long getThrottledResponses() {
+        return throttledResponses.get();
+    }
+
+    static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503; // Too Many Requests / Server Busy
+    }
+}
@@ -7,6 +7,11 @@ import com.azure.data.tables.models.TableServiceException;
 import com.azure.messaging.servicebus.ServiceBusClientBuilder;
 import com.azure.messaging.servicebus.ServiceBusMessage;
 import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobClientBuilder;
+import com.example.enrich.ContentFingerprinter;
+import com.example.startup.Lazy;
+import com.example.startup.StartupMetrics;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.azure.functions.ExecutionContext;
@@ -20,33 +25,56 @@ import java.util.Map;
 import java.util.UUID;
 
 public class FileUploadFunctionTableStorage {
-    private static final String STORAGE_CONNECTION_STRING = System.getenv("STORAGE_CONNECTION_STRING");
-    private static final String SERVICE_BUS_CONNECTION_STRING = System.getenv("SERVICE_BUS_CONNECTION_STRING");
-    private static final String SERVICE_BUS_QUEUE_NAME = System.getenv("SERVICE_BUS_QUEUE_NAME");
     private static final String TABLE_NAME = "FileMetadata";
-    private static final String EXPIRY_TIMESTAMP = OffsetDateTime.now(ZoneOffset.UTC).plusDays(7).toString();
+    private static final int EXPIRY_DAYS = 7;
+
+    // Clients are created on first use and reused by later invocations
+    private static final Lazy<TableClient> TABLE_CLIENT =
+            new Lazy<>("FileUploadHandler.tableClient", FileUploadFunctionTableStorage::createTableClient);
+    private static final Lazy<ServiceBusSenderClient> SENDER_CLIENT =
+            new Lazy<>("FileUploadHandler.senderClient", FileUploadFunctionTableStorage::createSenderClient);
+    private static final Lazy<ObjectMapper> OBJECT_MAPPER =
+            new Lazy<>("FileUploadHandler.objectMapper", ObjectMapper::new);
 
     @FunctionName("FileUploadHandler")
     public void run(
             @EventGridTrigger(name = "event") String eventJson,
             final ExecutionContext context) {
+        StartupMetrics.Invocation invocation = StartupMetrics.startInvocation("FileUploadHandler");
         context.getLogger().info("Event Grid trigger function executed.");
 
         try {
-            String metadataJson = parseAndConvertEventToJson(eventJson);
+            Map<String, Object> metadata = parseEventToMetadata(eventJson);
+
+            addContentFingerprint(metadata, context);
+
+            // Serialized once, the entity and the message carry the same JSON
+            String metadataJson = OBJECT_MAPPER.get().writeValueAsString(metadata);
 
-            logDataToTableStorage(metadataJson, context);
+            logDataToTableStorage(metadata, metadataJson, context);
 
             sendMessageToServiceBus(metadataJson, context);
 
         } catch (Exception e) {
             context.getLogger().severe("Error processing the event: " + e.getMessage());
+        } finally {
+            invocation.finish(context);
         }
     }
 
 
     public String parseAndConvertEventToJson(String eventJson) {
-        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            return OBJECT_MAPPER.get().writeValueAsString(parseEventToMetadata(eventJson));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse and convert event to JSON: " + e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> parseEventToMetadata(String eventJson) {
+        ObjectMapper objectMapper = OBJECT_MAPPER.get();
 
         try {
             JsonNode eventNode = objectMapper.readTree(eventJson);
@@ -63,10 +91,9 @@ public class FileUploadFunctionTableStorage {
             long fileSize = getJsonLongValue(dataNode, "contentLength");
             String blobType = getJsonTextValue(dataNode, "blobType");
             String eventTime = getJsonTextValue(eventNode, "eventTime");
+            String eTag = getOptionalJsonTextValue(dataNode, "eTag");
 
-            Map<String, Object> metadata = prepareMetadata(fileName, url, storageAccount, contentType, fileSize, blobType, eventTime);
-
-            return objectMapper.writeValueAsString(metadata);
+            return prepareMetadata(fileName, url, storageAccount, contentType, fileSize, blobType, eventTime, eTag);
 
         } catch (IllegalArgumentException e) {
             throw new RuntimeException("Invalid event structure: " + e.getMessage(), e);
@@ -84,6 +111,11 @@ public class FileUploadFunctionTableStorage {
         return valueNode.asText();
     }
 
+    private String getOptionalJsonTextValue(JsonNode node, String fieldName) {
+        JsonNode valueNode = node.get(fieldName);
+        return valueNode == null || valueNode.isNull() ? null : valueNode.asText();
+    }
+
     private long getJsonLongValue(JsonNode node, String fieldName) {
         JsonNode valueNode = node.get(fieldName);
         if (valueNode == null || valueNode.isNull()) {
@@ -99,7 +131,7 @@ public class FileUploadFunctionTableStorage {
         return url.substring(url.lastIndexOf('/') + 1);
     }
 
-    private Map<String, Object> prepareMetadata(String fileName, String url, String storageAccount, String contentType, long fileSize, String blobType, String eventTime) {
+    private Map<String, Object> prepareMetadata(String fileName, String url, String storageAccount, String contentType, long fileSize, String blobType, String eventTime, String eTag) {
         Map<String, Object> metadata = new HashMap<>();
         metadata.put("FileName", fileName);
         metadata.put("Url", url);
@@ -108,34 +140,81 @@ public class FileUploadFunctionTableStorage {
         metadata.put("FileSize", fileSize);
         metadata.put("BlobType", blobType);
         metadata.put("EventTime", eventTime);
+        if (eTag != null) {
+            metadata.put("ETag", eTag);
+        }
         metadata.put("UploadTimestamp", OffsetDateTime.now(ZoneOffset.UTC).toString());
         metadata.put("ProcessingStatus", "Pending");
-        metadata.put("ExpiryTimestamp", EXPIRY_TIMESTAMP);
+        metadata.put("ExpiryTimestamp", OffsetDateTime.now(ZoneOffset.UTC).plusDays(EXPIRY_DAYS).toString());
         return metadata;
     }
 
-    private void logDataToTableStorage(String metadataJson, ExecutionContext context) {
+    private void addContentFingerprint(Map<String, Object> metadata, ExecutionContext context) {
+        String url = (String) metadata.get("Url");
+        long fileSize = (Long) metadata.get("FileSize");
+        // Pins every ranged read to the version the event is about
+        String eTag = (String) metadata.get("ETag");
+
+        // The fingerprint is best effort, the event is still logged and published without it
+        try {
+            ContentFingerprinter fingerprinter = ContentFingerprinter.getInstance();
+            if (!fingerprinter.shouldFingerprint(fileSize)) {
+                return;
+            }
+
+            BlobClient blobClient = new BlobClientBuilder()
+                    .connectionString(System.getenv("STORAGE_CONNECTION_STRING"))
+                    .endpoint(url)
+                    .buildClient();
+
+            metadata.put("ContentFingerprint", fingerprinter.fingerprint(blobClient, fileSize, eTag));
+            metadata.put("FingerprintAlgorithm", fingerprinter.getAlgorithm());
+        } catch (Exception e) {
+            context.getLogger().warning("Failed to fingerprint blob " + url + ": " + e.getMessage());
+        }
+    }
+
+    private static TableClient createTableClient() {
         TableClient tableClient = new TableClientBuilder()
-                .connectionString(STORAGE_CONNECTION_STRING)
+                .connectionString(System.getenv("STORAGE_CONNECTION_STRING"))
                 .tableName(TABLE_NAME)
                 .buildClient();
 
-        // Create the table if it doesn't exist
+        // Create the table if it doesn't exist, once per instance
         try {
             tableClient.createTable();
-            context.getLogger().info("Table created: " + TABLE_NAME);
         } catch (TableServiceException e) {
             if (e.getResponse().getStatusCode() != 409) { // 409 Conflict -> table already exists
                 throw new RuntimeException("Failed to create table: " + e.getMessage(), e);
             }
         }
+        return tableClient;
+    }
+
+    private static ServiceBusSenderClient createSenderClient() {
+        return new ServiceBusClientBuilder()
+                .connectionString(System.getenv("SERVICE_BUS_CONNECTION_STRING"))
+                .sender()
+                .queueName(System.getenv("SERVICE_BUS_QUEUE_NAME"))
+                .buildClient();
+    }
+
+    private void logDataToTableStorage(Map<String, Object> metadata, String metadataJson, ExecutionContext context) {
+        TableClient tableClient = TABLE_CLIENT.get();
 
         String partitionKey = "FileMetadata"; // You can choose a partitioning strategy
         String rowKey = UUID.randomUUID().toString();
 
+        // Expiry and fingerprint come from the metadata so the entity and the message always agree
         TableEntity entity = new TableEntity(partitionKey, rowKey)
                 .addProperty("Metadata", metadataJson)
-                .addProperty("ExpiryTimestamp", EXPIRY_TIMESTAMP);
+                .addProperty("ExpiryTimestamp", metadata.get("ExpiryTimestamp"));
+
+        // Keep the fingerprint queryable as its own property for deduplication
+        Object fingerprint = metadata.get("ContentFingerprint");
+        if (fingerprint != null) {
+            entity.addProperty("ContentFingerprint", fingerprint);
+        }
 
         tableClient.createEntity(entity);
 
@@ -143,23 +222,13 @@ public class FileUploadFunctionTableStorage {
     }
 
     private void sendMessageToServiceBus(String metadataJson, ExecutionContext context) {
-        ServiceBusClientBuilder serviceBusClientBuilder = new ServiceBusClientBuilder()
-                .connectionString(SERVICE_BUS_CONNECTION_STRING);
-
-        ServiceBusSenderClient senderClient = serviceBusClientBuilder
-                .sender()
-                .queueName(SERVICE_BUS_QUEUE_NAME)
-                .buildClient();
-
         ServiceBusMessage message = new ServiceBusMessage(metadataJson);
 
         try {
-            senderClient.sendMessage(message);
+            SENDER_CLIENT.get().sendMessage(message);
             context.getLogger().info("Message sent to Service Bus queue.");
         } catch (Exception e) {
             throw new RuntimeException("Failed to send message to Service Bus: " + e.getMessage(), e);
-        } finally {
-            senderClient.close();
         }
     }
 }
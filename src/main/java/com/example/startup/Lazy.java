@@ -0,0 +1,33 @@
+package com.example.startup;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe holder that runs its initializer on first use instead of at class init.
+ * The initialization time is recorded as a startup phase under the given name.
+ */
+public class Lazy<T> implements Supplier<T> {
+    private final String phaseName;
+    private final Supplier<T> initializer;
+    private volatile T value;
+
+    public Lazy(String phaseName, Supplier<T> initializer) {
+        this.phaseName = phaseName;
+        this.initializer = initializer;
+    }
+
+    @Override
+    public T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = StartupMetrics.time(phaseName, initializer);
+                    value = result;
+                }
+            }
+        }
+        return result;
+    }
+}
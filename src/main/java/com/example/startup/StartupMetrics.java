@@ -0,0 +1,102 @@
+package com.example.startup;
+
+import com.microsoft.azure.functions.ExecutionContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Records startup-phase timings so cold-start latency is tracked as a number.
+ * When the first invocation of each function finishes, one "ColdStart" line is logged with its elapsed time,
+ * the JVM uptime at its start and the phases (lazy initializers) that ran during it.
+ */
+public class StartupMetrics {
+    private static final Set<String> INVOKED_FUNCTIONS = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean ANY_INVOKED = new AtomicBoolean();
+    private static final ThreadLocal<Invocation> CURRENT_INVOCATION = new ThreadLocal<>();
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * Runs the given initializer and records its duration under the phase name.
+     */
+    public static <T> T time(String phaseName, Supplier<T> initializer) {
+        long start = System.nanoTime();
+        try {
+            return initializer.get();
+        } finally {
+            record(phaseName, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Records a phase for the first invocation running on this thread. Phases outside such an invocation are not kept.
+     */
+    public static void record(String phaseName, long millis) {
+        Invocation invocation = CURRENT_INVOCATION.get();
+        if (invocation != null) {
+            invocation.phases.put(phaseName, millis);
+        }
+    }
+
+    /**
+     * Called at the start of every invocation; pair it with {@link Invocation#finish} in a finally block.
+     * Only the first invocation of each function in this JVM collects phases and is logged.
+     */
+    public static Invocation startInvocation(String functionName) {
+        boolean first = INVOKED_FUNCTIONS.add(functionName);
+        Invocation invocation = new Invocation(functionName, first, first && ANY_INVOKED.compareAndSet(false, true));
+        if (first) {
+            CURRENT_INVOCATION.set(invocation);
+        }
+        return invocation;
+    }
+
+    public static class Invocation {
+        private final String functionName;
+        private final boolean first;
+        private final boolean firstInJvm;
+        private final long jvmUptimeAtStartMillis;
+        private final long startNanos;
+        private final Map<String, Long> phases = new LinkedHashMap<>();
+
+        private Invocation(String functionName, boolean first, boolean firstInJvm) {
+            this.functionName = functionName;
+            this.first = first;
+            this.firstInJvm = firstInJvm;
+            this.jvmUptimeAtStartMillis = first ? ManagementFactory.getRuntimeMXBean().getUptime() : 0;
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Logs the ColdStart line if this was the first invocation of the function, then starts the
+         * background warm-up when STARTUP_BACKGROUND_WARMUP is set, so it never competes with the invocation.
+         */
+        public void finish(ExecutionContext context) {
+            if (!first) {
+                return;
+            }
+            CURRENT_INVOCATION.remove();
+
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            StringBuilder line = new StringBuilder("ColdStart function=").append(functionName)
+                    .append(" invocationMs=").append(elapsedMillis)
+                    .append(" jvmUptimeAtStartMs=").append(jvmUptimeAtStartMillis)
+                    .append(" firstInvocationInJvm=").append(firstInJvm);
+            for (Map.Entry<String, Long> phase : phases.entrySet()) {
+                line.append(' ').append(phase.getKey()).append("Ms=").append(phase.getValue());
+            }
+            context.getLogger().info(line.toString());
+
+            if (Boolean.parseBoolean(System.getenv("STARTUP_BACKGROUND_WARMUP"))) {
+                StartupWarmup.warmUpInBackground();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.startup;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.messaging.servicebus.ServiceBusClientBuilder;
+import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusSenderClient;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.BlobRange;
+import com.example.push.FileUploadFunctionTableStorage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pre-touches the hot paths of the function app so class loading and JIT warm-up happen before real traffic.
+ * Only offline work is done: clients are built against a dummy account and never send a request.
+ *
+ * Used by the Warmup function and by the optional background warm-up. Its phases are kept apart from the
+ * per-function ColdStart phases.
+ */
+public class StartupWarmup {
+    private static final String DUMMY_STORAGE_CONNECTION_STRING =
+            "DefaultEndpointsProtocol=https;AccountName=warmup;AccountKey=d2FybXVw;EndpointSuffix=core.windows.net";
+    private static final String DUMMY_SERVICE_BUS_CONNECTION_STRING =
+            "Endpoint=sb://warmup.servicebus.windows.net/;SharedAccessKeyName=warmup;SharedAccessKey=d2FybXVw";
+    private static final String SAMPLE_EVENT = "{\"eventTime\":\"2024-01-01T00:00:00Z\",\"data\":{"
+            + "\"url\":\"https://warmup.blob.core.windows.net/container/warmup.txt\",\"storageAccount\":\"warmup\","
+            + "\"contentType\":\"text/plain\",\"contentLength\":1,\"blobType\":\"BlockBlob\"}}";
+
+    private static final AtomicBoolean BACKGROUND_STARTED = new AtomicBoolean();
+    private static final Map<String, Long> PHASE_MILLIS = new LinkedHashMap<>();
+
+    private StartupWarmup() {
+    }
+
+    /**
+     * Runs every warm-up step once. Failures are logged and do not stop the remaining steps.
+     */
+    public static void warmUp(Logger logger) {
+        long start = System.nanoTime();
+        runStep("jackson", logger, StartupWarmup::warmUpJackson);
+        runStep("eventParsing", logger, StartupWarmup::warmUpEventParsing);
+        runStep("digest", logger, StartupWarmup::warmUpDigest);
+        runStep("tableClient", logger, StartupWarmup::warmUpTableClient);
+        runStep("blobClient", logger, StartupWarmup::warmUpBlobClient);
+        runStep("serviceBusClient", logger, StartupWarmup::warmUpServiceBusClient);
+        record("total", start);
+    }
+
+    /**
+     * Returns a copy of the warm-up step timings, in the order they ran.
+     */
+    public static Map<String, Long> getPhases() {
+        synchronized (PHASE_MILLIS) {
+            return new LinkedHashMap<>(PHASE_MILLIS);
+        }
+    }
+
+    /**
+     * Starts warmUp on a daemon thread, at most once per JVM.
+     */
+    public static void warmUpInBackground() {
+        if (!BACKGROUND_STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> warmUp(Logger.getLogger(StartupWarmup.class.getName())), "startup-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void runStep(String name, Logger logger, ThrowingRunnable step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Warm-up step " + name + " failed: " + e.getMessage());
+        }
+        record(name, start);
+    }
+
+    private static void record(String name, long startNanos) {
+        synchronized (PHASE_MILLIS) {
+            PHASE_MILLIS.put(name, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    private static void warmUpJackson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("FileName", "warmup.txt");
+        metadata.put("FileSize", 1L);
+        metadata.put("ProcessingTime", OffsetDateTime.now(ZoneOffset.UTC).toString());
+        objectMapper.readTree(objectMapper.writeValueAsString(metadata));
+    }
+
+    private static void warmUpEventParsing() {
+        new FileUploadFunctionTableStorage().parseAndConvertEventToJson(SAMPLE_EVENT);
+    }
+
+    private static void warmUpDigest() throws Exception {
+        MessageDigest.getInstance("SHA-256").digest(new byte[1024]);
+    }
+
+    private static void warmUpTableClient() {
+        TableClient tableClient = new TableClientBuilder()
+                .connectionString(DUMMY_STORAGE_CONNECTION_STRING)
+                .tableName("warmup")
+                .buildClient();
+        new ListEntitiesOptions().setFilter("ExpiryTimestamp lt '" + OffsetDateTime.now(ZoneOffset.UTC) + "'");
+        new TableEntity("warmup", "warmup").addProperty("Metadata", "{}");
+        tableClient.getTableName();
+    }
+
+    private static void warmUpBlobClient() {
+        BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
+                .connectionString(DUMMY_STORAGE_CONNECTION_STRING)
+                .buildClient();
+        BlobClient blobClient = blobServiceClient.getBlobContainerClient("warmup").getBlobClient("warmup.txt");
+        new BlobRange(0, 1L);
+        blobClient.getBlobUrl();
+    }
+
+    private static void warmUpServiceBusClient() {
+        ServiceBusSenderClient senderClient = new ServiceBusClientBuilder()
+                .connectionString(DUMMY_SERVICE_BUS_CONNECTION_STRING)
+                .sender()
+                .queueName("warmup")
+                .buildClient();
+        new ServiceBusMessage("{}");
+        senderClient.close();
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.startup;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.WarmupTrigger;
+
+/**
+ * Runs the warm-up hook when the platform adds a new instance (Premium and Dedicated plans).
+ * On the Consumption plan set STARTUP_BACKGROUND_WARMUP=true to run it once the first invocation has finished.
+ */
+public class WarmupFunction {
+    @FunctionName("Warmup")
+    public void run(
+            @WarmupTrigger Object warmupContext,
+            final ExecutionContext context) {
+        context.getLogger().info("Warmup function executed.");
+
+        StartupWarmup.warmUp(context.getLogger());
+
+        context.getLogger().info("Warm-up phases: " + StartupWarmup.getPhases());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example;
+
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+
+/**
+ * Loggers for tests that check what a function logs.
+ */
+public final class TestLoggers {
+    private TestLoggers() {
+    }
+
+    /**
+     * Returns a logger that appends every message to the given list instead of printing it.
+     */
+    public static Logger capturingLogger(List<String> lines) {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                lines.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return logger;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.enrich;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+/**
+ * Unit test and throughput benchmark for ContentFingerprinter.
+ */
+public class ContentFingerprinterTest {
+    private static final int MB = 1024 * 1024;
+
+    /**
+     * The chunked, parallel fingerprint must equal a plain hash of the whole content.
+     */
+    @Test
+    public void testFingerprintMatchesWholeContentHash() throws Exception {
+        byte[] content = randomContent(10 * MB + 12345);
+        ContentFingerprinter fingerprinter = new ContentFingerprinter(true, "SHA-256", 64L * MB, MB, 4, 3);
+
+        String fingerprint = fingerprinter.fingerprint(inMemoryReader(content), content.length);
+
+        assertEquals(toHex(MessageDigest.getInstance("SHA-256").digest(content)), fingerprint);
+    }
+
+    @Test
+    public void testEmptyContent() throws Exception {
+        ContentFingerprinter fingerprinter = new ContentFingerprinter(true, "SHA-256", MB, MB, 2, 2);
+
+        String fingerprint = fingerprinter.fingerprint(inMemoryReader(new byte[0]), 0);
+
+        assertEquals(toHex(MessageDigest.getInstance("SHA-256").digest()), fingerprint);
+    }
+
+    @Test
+    public void testSkipsBlobsAboveMaxSizeOrWhenDisabled() {
+        ContentFingerprinter enabled = new ContentFingerprinter(true, "SHA-256", MB, MB, 2, 2);
+        ContentFingerprinter disabled = new ContentFingerprinter(false, "SHA-256", MB, MB, 2, 2);
+
+        assertTrue(enabled.shouldFingerprint(MB));
+        assertFalse(enabled.shouldFingerprint(MB + 1));
+        assertFalse(disabled.shouldFingerprint(1));
+    }
+
+    /**
+     * A disabled fingerprinter ignores its sizes, so invalid settings cannot fail it.
+     */
+    @Test
+    public void testDisabledFingerprinterAcceptsInvalidSizes() {
+        ContentFingerprinter disabled = new ContentFingerprinter(false, "SHA-256", 0, 0, 0, 0);
+
+        assertFalse(disabled.shouldFingerprint(0));
+        assertThrows(IllegalStateException.class, () -> disabled.fingerprint(inMemoryReader(new byte[0]), 0));
+    }
+
+    @Test
+    public void testEnabledFingerprinterRejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new ContentFingerprinter(true, "SHA-256", MB, MB, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> new ContentFingerprinter(true, "SHA-256", MB, 0, 2, 2));
+    }
+
+    @Test
+    public void testShortReadFails() {
+        ContentFingerprinter fingerprinter = new ContentFingerprinter(true, "SHA-256", 4L * MB, MB, 2, 2);
+
+        assertThrows(Exception.class, () -> fingerprinter.fingerprint((offset, target) -> { }, 2 * MB));
+    }
+
+    /**
+     * A failed range must not leak its buffer: the same instance keeps working with a pool of one buffer.
+     */
+    @Test
+    public void testFailedReadDoesNotExhaustPool() throws Exception {
+        byte[] content = randomContent(3 * MB);
+        ContentFingerprinter fingerprinter = new ContentFingerprinter(true, "SHA-256", 4L * MB, MB, 1, 1);
+
+        assertThrows(Exception.class, () -> fingerprinter.fingerprint((offset, target) -> {
+            throw new IllegalStateException("Download failed");
+        }, content.length));
+
+        assertEquals(toHex(MessageDigest.getInstance("SHA-256").digest(content)),
+                fingerprinter.fingerprint(inMemoryReader(content), content.length));
+    }
+
+    /**
+     * Reports the fingerprinter's throughput for in-memory content, i.e. without network time. Excluded from the default
+     * test run, run it with mvn test -Pbenchmark.
+     *
+     * The per-core figure divides the bytes by the CPU time of the calling thread (digesting) plus the reader threads
+     * (range copies), so it does not depend on how many cores the machine has.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkThroughputPerCore() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeSupported());
+        threads.setThreadCpuTimeEnabled(true);
+
+        int parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+        byte[] content = randomContent(64 * MB);
+        ContentFingerprinter fingerprinter = new ContentFingerprinter(true, "SHA-256", 128L * MB, 4 * MB, parallelism, parallelism * 2);
+        ContentFingerprinter.RangeReader reader = inMemoryReader(content);
+
+        int warmups = 3;
+        int iterations = 5;
+
+        for (int i = 0; i < warmups; i++) {
+            fingerprinter.fingerprint(reader, content.length);
+        }
+        Map<Long, Long> readerCpuAtStart = readerThreadCpuNanos(threads);
+        long callerCpuAtStart = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            fingerprinter.fingerprint(reader, content.length);
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        long cpuNanos = threads.getCurrentThreadCpuTime() - callerCpuAtStart;
+        for (Map.Entry<Long, Long> readerCpu : readerThreadCpuNanos(threads).entrySet()) {
+            cpuNanos += readerCpu.getValue() - readerCpuAtStart.getOrDefault(readerCpu.getKey(), 0L);
+        }
+
+        double megabytes = (double) iterations * content.length / MB;
+        double cpuSeconds = cpuNanos / 1e9;
+        Logger.getGlobal().info(String.format("SHA-256 fingerprint: %.1f MB/s per core (%.2f cores busy); end to end with %d reader threads: %.1f MB/s",
+                megabytes / cpuSeconds, cpuSeconds / wallSeconds, parallelism, megabytes / wallSeconds));
+        assertTrue(cpuSeconds > 0 && wallSeconds > 0);
+    }
+
+    /**
+     * CPU time of the fingerprinter's reader threads, by thread id.
+     */
+    private static Map<Long, Long> readerThreadCpuNanos(ThreadMXBean threads) {
+        Map<Long, Long> cpuNanos = new HashMap<>();
+        for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread != null && thread.getThreadName().equals("content-fingerprint")) {
+                long cpu = threads.getThreadCpuTime(thread.getThreadId());
+                if (cpu >= 0) {
+                    cpuNanos.put(thread.getThreadId(), cpu);
+                }
+            }
+        }
+        return cpuNanos;
+    }
+
+    private static ContentFingerprinter.RangeReader inMemoryReader(byte[] content) {
+        return (offset, target) -> target.put(content, (int) offset, target.remaining());
+    }
+
+    private static byte[] randomContent(int size) {
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
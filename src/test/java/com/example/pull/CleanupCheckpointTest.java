@@ -0,0 +1,83 @@
+package com.example.pull;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Unit test for the cleanup pacing in CleanupCheckpoint.
+ */
+public class CleanupCheckpointTest {
+    private static final int MIN = 100;
+    private static final int MAX = 5000;
+
+    @Test
+    public void testDoublesWhenBacklogUsesWholeBudget() {
+        CleanupCheckpoint checkpoint = checkpointWithBudget(400);
+
+        checkpoint.adjustPace(400, true, false, MIN, MAX);
+
+        assertEquals(800, checkpoint.getRowBudget());
+        assertEquals(400, checkpoint.getLastPassDeleted());
+        assertFalse(checkpoint.isLastPassThrottled());
+    }
+
+    @Test
+    public void testHoldsAtAchievedRowsWhenTimeRunsOut() {
+        CleanupCheckpoint checkpoint = checkpointWithBudget(400);
+
+        checkpoint.adjustPace(250, true, false, MIN, MAX);
+
+        assertEquals(250, checkpoint.getRowBudget());
+    }
+
+    @Test
+    public void testHalvesWhenThrottled() {
+        CleanupCheckpoint checkpoint = checkpointWithBudget(400);
+
+        checkpoint.adjustPace(400, true, true, MIN, MAX);
+
+        assertEquals(200, checkpoint.getRowBudget());
+        assertTrue(checkpoint.isLastPassThrottled());
+    }
+
+    @Test
+    public void testHalvesWhenSweepFinishes() {
+        CleanupCheckpoint checkpoint = checkpointWithBudget(400);
+
+        checkpoint.adjustPace(10, false, false, MIN, MAX);
+
+        assertEquals(200, checkpoint.getRowBudget());
+    }
+
+    @Test
+    public void testClampsToMinAndMax() {
+        CleanupCheckpoint growing = checkpointWithBudget(4000);
+        growing.adjustPace(4000, true, false, MIN, MAX);
+        assertEquals(MAX, growing.getRowBudget());
+
+        CleanupCheckpoint shrinking = checkpointWithBudget(150);
+        shrinking.adjustPace(150, true, true, MIN, MAX);
+        assertEquals(MIN, shrinking.getRowBudget());
+
+        CleanupCheckpoint slow = checkpointWithBudget(400);
+        slow.adjustPace(0, true, false, MIN, MAX);
+        assertEquals(MIN, slow.getRowBudget());
+    }
+
+    @Test
+    public void testStartsFromMinimumWithoutBudget() {
+        CleanupCheckpoint checkpoint = new CleanupCheckpoint();
+
+        checkpoint.adjustPace(MIN, true, false, MIN, MAX);
+
+        assertEquals(2 * MIN, checkpoint.getRowBudget());
+    }
+
+    private static CleanupCheckpoint checkpointWithBudget(int rowBudget) {
+        CleanupCheckpoint checkpoint = new CleanupCheckpoint();
+        checkpoint.setRowBudget(rowBudget);
+        return checkpoint;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.pull;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.models.TableEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Unit test for the resume, stop-early and throttling rules of CleanupPass.
+ */
+public class CleanupPassTest {
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final List<String> deleted = new ArrayList<>();
+    private final AtomicLong throttledResponses = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testSweepCompletesWhenLastPageIsDeleted() {
+        FakePageSource source = new FakePageSource(3, 2);
+
+        CleanupPass.Result result = pass(source).run(null, 100, NO_DEADLINE);
+
+        assertEquals(6, result.getDeletedCount());
+        assertFalse(result.isBacklogRemaining());
+        assertNull(result.getResumeToken());
+        assertFalse(result.isThrottled());
+    }
+
+    @Test
+    public void testResumesFromStartOfPageWhenBudgetEndsMidPage() {
+        FakePageSource source = new FakePageSource(3, 3);
+
+        CleanupPass.Result first = pass(source).run(null, 4, NO_DEADLINE);
+
+        assertEquals(4, first.getDeletedCount());
+        assertTrue(first.isBacklogRemaining());
+        assertEquals("p1", first.getResumeToken());
+
+        // The rows of the interrupted page that were not deleted are returned again from its token
+        CleanupPass.Result second = pass(source).run(first.getResumeToken(), 100, NO_DEADLINE);
+
+        assertEquals("p1", source.startTokens.get(1));
+        assertEquals(5, second.getDeletedCount());
+        assertEquals(9, deleted.size());
+        assertFalse(second.isBacklogRemaining());
+    }
+
+    @Test
+    public void testDoesNotFetchAnotherPageOnceBudgetIsUsed() {
+        FakePageSource source = new FakePageSource(3, 2);
+
+        CleanupPass.Result result = pass(source).run(null, 2, NO_DEADLINE);
+
+        assertEquals(2, result.getDeletedCount());
+        assertEquals(1, source.fetchedPages);
+        assertTrue(result.isBacklogRemaining());
+        assertEquals("p1", result.getResumeToken());
+    }
+
+    /**
+     * A pass that times out before finishing its first page is not the end of the sweep.
+     */
+    @Test
+    public void testTimeoutOnFirstPageKeepsBacklog() {
+        FakePageSource source = new FakePageSource(2, 2);
+        clock.set(1000);
+
+        CleanupPass.Result result = pass(source).run(null, 100, 1000);
+
+        assertEquals(0, result.getDeletedCount());
+        assertEquals(0, source.fetchedPages);
+        assertTrue(result.isBacklogRemaining());
+        assertNull(result.getResumeToken());
+    }
+
+    /**
+     * The service can return empty pages with a continuation token; they must not run past the deadline.
+     */
+    @Test
+    public void testEmptyPagesStopAtDeadline() {
+        FakePageSource source = new FakePageSource(Integer.MAX_VALUE, 0);
+        source.millisPerFetch = 10;
+
+        CleanupPass.Result result = pass(source).run(null, 100, 100);
+
+        assertEquals(0, result.getDeletedCount());
+        assertEquals(10, source.fetchedPages);
+        assertTrue(result.isBacklogRemaining());
+        assertEquals("p10", result.getResumeToken());
+    }
+
+    @Test
+    public void testThrottledPageFetchKeepsPosition() {
+        FakePageSource source = new FakePageSource(3, 2);
+        source.failingPage = 1;
+        source.failure = httpError(429);
+
+        CleanupPass.Result result = pass(source).run(null, 100, NO_DEADLINE);
+
+        assertEquals(2, result.getDeletedCount());
+        assertTrue(result.isThrottled());
+        assertTrue(result.isBacklogRemaining());
+        assertEquals("p1", result.getResumeToken());
+    }
+
+    /**
+     * Throttled responses that the retry policy recovers from still end the pass.
+     */
+    @Test
+    public void testRetriedThrottlingStopsPass() {
+        FakePageSource source = new FakePageSource(3, 2);
+        CleanupPass pass = new CleanupPass(source, entity -> {
+            deleted.add(entity.getPartitionKey() + "/" + entity.getRowKey());
+            throttledResponses.incrementAndGet();
+        }, throttledResponses::get, clock::get);
+
+        CleanupPass.Result result = pass.run(null, 100, NO_DEADLINE);
+
+        assertEquals(1, result.getDeletedCount());
+        assertTrue(result.isThrottled());
+        assertEquals(1, result.getThrottledResponses());
+        assertTrue(result.isBacklogRemaining());
+        assertNull(result.getResumeToken());
+    }
+
+    @Test
+    public void testOtherErrorsArePropagated() {
+        FakePageSource source = new FakePageSource(3, 2);
+        source.failingPage = 0;
+        source.failure = httpError(500);
+
+        assertThrows(HttpResponseException.class, () -> pass(source).run(null, 100, NO_DEADLINE));
+    }
+
+    private CleanupPass pass(FakePageSource source) {
+        return new CleanupPass(source, entity -> deleted.add(entity.getPartitionKey() + "/" + entity.getRowKey()), throttledResponses::get, clock::get);
+    }
+
+    private static HttpResponseException httpError(int statusCode) {
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(statusCode);
+        return new HttpResponseException("Status " + statusCode, response);
+    }
+
+    /**
+     * Serves pages "p0" (the null token), "p1", ... with entities that are removed once deleted,
+     * so a page read again only returns its remaining rows.
+     */
+    private class FakePageSource implements CleanupPass.PageSource {
+        private final int pageCount;
+        private final List<List<TableEntity>> pages = new ArrayList<>();
+        private final List<String> startTokens = new ArrayList<>();
+        private int fetchedPages;
+        private int failingPage = -1;
+        private RuntimeException failure;
+        private long millisPerFetch;
+
+        FakePageSource(int pageCount, int rowsPerPage) {
+            this.pageCount = pageCount;
+            for (int page = 0; page < Math.min(pageCount, 100); page++) {
+                List<TableEntity> entities = new ArrayList<>();
+                for (int row = 0; row < rowsPerPage; row++) {
+                    entities.add(new TableEntity("p" + page, "r" + row));
+                }
+                pages.add(entities);
+            }
+        }
+
+        @Override
+        public Iterator<CleanupPass.Page> pagesFrom(String continuationToken) {
+            startTokens.add(continuationToken);
+            int firstPage = continuationToken == null ? 0 : Integer.parseInt(continuationToken.substring(1));
+
+            return new Iterator<CleanupPass.Page>() {
+                private int page = firstPage;
+
+                @Override
+                public boolean hasNext() {
+                    return page < pageCount;
+                }
+
+                @Override
+                public CleanupPass.Page next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (page == failingPage) {
+                        throw failure;
+                    }
+                    fetchedPages++;
+                    clock.addAndGet(millisPerFetch);
+
+                    List<TableEntity> entities = page < pages.size() ? remaining(pages.get(page)) : Collections.<TableEntity>emptyList();
+                    page++;
+                    return new CleanupPass.Page(entities, page < pageCount ? "p" + page : null);
+                }
+            };
+        }
+
+        private List<TableEntity> remaining(List<TableEntity> entities) {
+            List<TableEntity> remaining = new ArrayList<>();
+            for (TableEntity entity : entities) {
+                if (!deleted.contains(entity.getPartitionKey() + "/" + entity.getRowKey())) {
+                    remaining.add(entity);
+                }
+            }
+            return remaining;
+        }
+    }
+}
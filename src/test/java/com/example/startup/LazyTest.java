@@ -0,0 +1,88 @@
+package com.example.startup;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.TestLoggers.capturingLogger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Unit test for Lazy.
+ */
+public class LazyTest {
+    @Test
+    public void testInitializesOnceAcrossThreads() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        Lazy<Object> lazy = new Lazy<>("LazyTest.concurrent", () -> {
+            calls.incrementAndGet();
+            try {
+                started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Object();
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(lazy::get));
+            }
+            started.countDown();
+
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRetriesAfterInitializerThrows() {
+        AtomicInteger calls = new AtomicInteger();
+        Lazy<String> lazy = new Lazy<>("LazyTest.retry", () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("Not reachable yet");
+            }
+            return "client";
+        });
+
+        assertThrows(IllegalStateException.class, lazy::get);
+        assertEquals("client", lazy.get());
+        assertEquals("client", lazy.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testInitializationIsRecordedAsPhaseOfFirstInvocation() {
+        List<String> lines = new ArrayList<>();
+        final ExecutionContext context = mock(ExecutionContext.class);
+        doReturn(capturingLogger(lines)).when(context).getLogger();
+
+        Lazy<String> lazy = new Lazy<>("LazyTest.client", () -> "client");
+
+        StartupMetrics.Invocation invocation = StartupMetrics.startInvocation("LazyTestFunction");
+        lazy.get();
+        invocation.finish(context);
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains(" LazyTest.clientMs="));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.startup;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.TestLoggers.capturingLogger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Unit test for StartupMetrics.
+ */
+public class StartupMetricsTest {
+    @Test
+    public void testLogsOnlyFirstInvocationOfEachFunction() {
+        List<String> lines = new ArrayList<>();
+        final ExecutionContext context = mockContext(lines);
+
+        StartupMetrics.startInvocation("OnceFunction").finish(context);
+        StartupMetrics.startInvocation("OnceFunction").finish(context);
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("ColdStart function=OnceFunction "));
+        assertTrue(lines.get(0).contains(" invocationMs="));
+        assertTrue(lines.get(0).contains(" jvmUptimeAtStartMs="));
+    }
+
+    @Test
+    public void testLineContainsOnlyPhasesRecordedDuringTheInvocation() {
+        List<String> lines = new ArrayList<>();
+        final ExecutionContext context = mockContext(lines);
+
+        StartupMetrics.Invocation other = StartupMetrics.startInvocation("OtherFunction");
+        StartupMetrics.record("OtherFunction.client", 5);
+        other.finish(context);
+
+        StartupMetrics.record("outside.invocation", 7);
+
+        StartupMetrics.Invocation invocation = StartupMetrics.startInvocation("PhasesFunction");
+        String value = StartupMetrics.time("PhasesFunction.client", () -> "client");
+        invocation.finish(context);
+
+        assertEquals("client", value);
+        String line = lines.get(1);
+        assertTrue(line.startsWith("ColdStart function=PhasesFunction "));
+        assertTrue(line.contains(" PhasesFunction.clientMs="));
+        assertFalse(line.contains("OtherFunction.client"));
+        assertFalse(line.contains("outside.invocation"));
+    }
+
+    @Test
+    public void testLaterInvocationsDoNotCollectPhases() {
+        List<String> lines = new ArrayList<>();
+        final ExecutionContext context = mockContext(lines);
+
+        StartupMetrics.startInvocation("RepeatedFunction").finish(context);
+
+        StartupMetrics.Invocation second = StartupMetrics.startInvocation("RepeatedFunction");
+        StartupMetrics.record("RepeatedFunction.late", 1);
+        second.finish(context);
+
+        StartupMetrics.Invocation next = StartupMetrics.startInvocation("NextFunction");
+        next.finish(context);
+
+        assertEquals(2, lines.size());
+        assertFalse(lines.get(1).contains("RepeatedFunction.late"));
+    }
+
+    private static ExecutionContext mockContext(List<String> lines) {
+        final ExecutionContext context = mock(ExecutionContext.class);
+        doReturn(capturingLogger(lines)).when(context).getLogger();
+        return context;
+    }
+}